@@ -5,6 +5,7 @@ package org.terasology.changingBlocks;
 import org.joml.RoundingMode;
 import org.joml.Vector3f;
 import org.joml.Vector3i;
+import org.joml.Vector3ic;
 import org.terasology.engine.core.Time;
 import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
@@ -23,8 +24,9 @@ import org.terasology.engine.world.block.BlockUri;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 @RegisterSystem(RegisterMode.AUTHORITY)
 public class ChangingBlocksSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
@@ -41,75 +43,200 @@ public class ChangingBlocksSystem extends BaseComponentSystem implements UpdateS
 
     private long lastCheckTime;
 
+    /**
+     * Changing blocks that were added since the last update and still need their first stage timer. Loading a chunk
+     * adds many of these at once, so they are initialised together at the start of the next update.
+     */
+    private List<EntityRef> pendingSpawns = new ArrayList<>();
+
     @Override
     public void initialise() { }
 
     @ReceiveEvent(components = {ChangingBlocksComponent.class, LocationComponent.class, BlockComponent.class})
     public void onSpawn(OnAddedComponent event, EntityRef entity) {
-        long initTime = timer.getGameTimeInMs();
-
-        ChangingBlocksComponent changingBlocks = entity.getComponent(ChangingBlocksComponent.class);
-        LocationComponent locComponent = entity.getComponent(LocationComponent.class);
-        Block currentBlock = worldprovider.getBlock(locComponent.getWorldPosition(new Vector3f()));
-        BlockUri currentBlockFamilyStage = currentBlock.getURI();
-
-        changingBlocks.timeInGameMsToNextStage = changingBlocks.blockFamilyStages.get(currentBlockFamilyStage);
-        changingBlocks.lastGameTimeCheck = initTime;
-
-        entity.saveComponent(changingBlocks);
+        pendingSpawns.add(entity);
     }
 
     @Override
-    public void shutdown() { }
+    public void shutdown() {
+        pendingSpawns.clear();
+    }
 
     @Override
     public void update(float delta) {
-        // System last time check is to try to improve performance
         long gameTimeInMs = timer.getGameTimeInMs();
+        if (!pendingSpawns.isEmpty()) {
+            initialiseSpawned(gameTimeInMs);
+        }
+        // System last time check is to try to improve performance
         if (lastCheckTime + CHECK_INTERVAL < gameTimeInMs) {
-            for (EntityRef changingBlocks : entityManager.getEntitiesWith(ChangingBlocksComponent.class,
-                    BlockComponent.class, LocationComponent.class)) {
-                ChangingBlocksComponent blockAnimation = changingBlocks.getComponent(ChangingBlocksComponent.class);
-                if (blockAnimation.stopped) {
-                    return;
-                }
-                if (blockAnimation.lastGameTimeCheck == -1) {
-                    blockAnimation.lastGameTimeCheck = gameTimeInMs;
-                    changingBlocks.saveComponent(blockAnimation);
-                    return;
-                }
+            List<StageSnapshot> dueBlocks = collectDueBlocks(gameTimeInMs);
+            if (!dueBlocks.isEmpty()) {
+                applyAdvances(dueBlocks, gameTimeInMs);
+            }
+            lastCheckTime = gameTimeInMs;
+        }
+    }
+
+    /**
+     * Starts the stage timer of every changing block added since the last update in one pass. The current stage is
+     * read from the block component rather than looked up in the world.
+     *
+     * @param initTime The game time to count the current stage from.
+     */
+    private void initialiseSpawned(long initTime) {
+        // Swapped out first, so a failing entity cannot stay queued and fail again on every update
+        List<EntityRef> spawned = pendingSpawns;
+        pendingSpawns = new ArrayList<>();
+        for (EntityRef entity : spawned) {
+            ChangingBlocksComponent changingBlocks = entity.getComponent(ChangingBlocksComponent.class);
+            BlockComponent blockComponent = entity.getComponent(BlockComponent.class);
+            if (changingBlocks == null || blockComponent == null) {
+                continue;
+            }
+            Long stageTime = changingBlocks.blockFamilyStages.get(blockComponent.getBlock().getURI());
+            if (stageTime == null) {
+                continue;
+            }
+
+            changingBlocks.timeInGameMsToNextStage = stageTime;
+            changingBlocks.lastGameTimeCheck = initTime;
+
+            entity.saveComponent(changingBlocks);
+        }
+    }
+
+    /**
+     * Snapshots every changing block whose current stage has run out, before any of them is advanced.
+     *
+     * @param gameTimeInMs The game time of this check.
+     * @return The due blocks.
+     */
+    private List<StageSnapshot> collectDueBlocks(long gameTimeInMs) {
+        List<StageSnapshot> dueBlocks = new ArrayList<>();
+        for (EntityRef changingBlocks : entityManager.getEntitiesWith(ChangingBlocksComponent.class,
+                BlockComponent.class, LocationComponent.class)) {
+            ChangingBlocksComponent blockAnimation = changingBlocks.getComponent(ChangingBlocksComponent.class);
+            if (blockAnimation.stopped) {
+                continue;
+            }
+            if (blockAnimation.lastGameTimeCheck == -1) {
+                blockAnimation.lastGameTimeCheck = gameTimeInMs;
+                changingBlocks.saveComponent(blockAnimation);
+                continue;
+            }
+
+            if (gameTimeInMs - blockAnimation.lastGameTimeCheck > blockAnimation.timeInGameMsToNextStage) {
+                LocationComponent locComponent = changingBlocks.getComponent(LocationComponent.class);
+                Vector3i blockPosition = new Vector3i(locComponent.getWorldPosition(new Vector3f()), RoundingMode.FLOOR);
+                BlockUri currentBlockFamilyStage = worldprovider.getBlock(blockPosition).getURI();
+
+                dueBlocks.add(new StageSnapshot(changingBlocks, blockPosition, currentBlockFamilyStage,
+                        new ArrayList<>(blockAnimation.blockFamilyStages.keySet()), blockAnimation.loops));
+            }
+        }
+        return dueBlocks;
+    }
+
+    /**
+     * Determines the stage that follows the snapshotted one.
+     */
+    private static StageAdvance advance(StageSnapshot snapshot) {
+        int oldStageIndex = snapshot.stages.indexOf(snapshot.currentStage);
+        int currentstageIndex = oldStageIndex;
+        int lastStageIndex = snapshot.stages.size() - 1;
+
+        if (lastStageIndex <= currentstageIndex) {
+            return new StageAdvance(snapshot, oldStageIndex, -1, null, false);
+        }
+        boolean completed = false;
+        currentstageIndex++;
+        if (currentstageIndex == lastStageIndex) {
+            if (snapshot.loops) {
+                currentstageIndex = 0;
+            } else {
+                completed = true;
+            }
+        }
+        return new StageAdvance(snapshot, oldStageIndex, currentstageIndex, snapshot.stages.get(currentstageIndex), completed);
+    }
 
-                if (gameTimeInMs - blockAnimation.lastGameTimeCheck > blockAnimation.timeInGameMsToNextStage) {
-                    blockAnimation.lastGameTimeCheck = timer.getGameTimeInMs();
-
-                    LocationComponent locComponent = changingBlocks.getComponent(LocationComponent.class);
-                    Block currentBlock = worldprovider.getBlock(locComponent.getWorldPosition(new Vector3f()));
-                    BlockUri currentBlockFamilyStage = currentBlock.getURI();
-
-                    Set<BlockUri> keySet = blockAnimation.blockFamilyStages.keySet();
-                    List<BlockUri> keyList = new ArrayList<>(keySet);
-                    int currentstageIndex = keyList.indexOf(currentBlockFamilyStage);
-                    int lastStageIndex = blockAnimation.blockFamilyStages.size() - 1;
-
-                    if (lastStageIndex > currentstageIndex) {
-                        currentstageIndex++;
-                        if (currentstageIndex == lastStageIndex) {
-                            if (blockAnimation.loops) {
-                                currentstageIndex = 0;
-                            } else {
-                                blockAnimation.stopped = true;
-                                changingBlocks.send(new OnBlockSequenceComplete());
-                            }
-                        }
-                        BlockUri newBlockUri = keyList.get(currentstageIndex);
-                        Block newBlock = blockManager.getBlock(newBlockUri);
-                        worldprovider.setBlock(new Vector3i(locComponent.getWorldPosition(new Vector3f()), RoundingMode.FLOOR), newBlock);
-                        blockAnimation.timeInGameMsToNextStage = blockAnimation.blockFamilyStages.get(currentBlockFamilyStage);
-                    }
-                    changingBlocks.saveComponent(blockAnimation);
+    /**
+     * Advances every due block. All block changes of this check are merged and placed with a single call to the world
+     * provider, and summarised in a single {@link OnBlockStagesAdvanced} sent to the world entity.
+     *
+     * @param dueBlocks The snapshots of the due blocks.
+     * @param gameTimeInMs The game time of this check.
+     */
+    private void applyAdvances(List<StageSnapshot> dueBlocks, long gameTimeInMs) {
+        Map<Vector3ic, Block> blockChanges = new HashMap<>();
+        OnBlockStagesAdvanced.Builder stagesAdvanced = new OnBlockStagesAdvanced.Builder(dueBlocks.size());
+        for (StageSnapshot snapshot : dueBlocks) {
+            StageAdvance advance = advance(snapshot);
+            EntityRef changingBlocks = advance.snapshot.entity;
+            // Handlers of an earlier OnBlockSequenceComplete may have removed this block
+            ChangingBlocksComponent blockAnimation = changingBlocks.getComponent(ChangingBlocksComponent.class);
+            if (blockAnimation == null) {
+                continue;
+            }
+            blockAnimation.lastGameTimeCheck = gameTimeInMs;
+
+            if (advance.newStage != null) {
+                if (advance.completed) {
+                    blockAnimation.stopped = true;
+                    changingBlocks.send(new OnBlockSequenceComplete());
+                }
+                blockChanges.put(advance.snapshot.position, blockManager.getBlock(advance.newStage));
+                stagesAdvanced.add(changingBlocks, advance.snapshot.position, advance.oldStageIndex, advance.newStageIndex,
+                        advance.completed);
+                Long stageTime = blockAnimation.blockFamilyStages.get(advance.snapshot.currentStage);
+                if (stageTime != null) {
+                    blockAnimation.timeInGameMsToNextStage = stageTime;
                 }
             }
-            lastCheckTime = gameTimeInMs;
+            changingBlocks.saveComponent(blockAnimation);
+        }
+        if (!blockChanges.isEmpty()) {
+            worldprovider.setBlocks(blockChanges);
+            worldprovider.getWorldEntity().send(stagesAdvanced.build());
+        }
+    }
+
+    /**
+     * Immutable view of a due changing block, taken before any block of the check is advanced.
+     */
+    private static final class StageSnapshot {
+        private final EntityRef entity;
+        private final Vector3ic position;
+        private final BlockUri currentStage;
+        private final List<BlockUri> stages;
+        private final boolean loops;
+
+        private StageSnapshot(EntityRef entity, Vector3ic position, BlockUri currentStage, List<BlockUri> stages, boolean loops) {
+            this.entity = entity;
+            this.position = position;
+            this.currentStage = currentStage;
+            this.stages = stages;
+            this.loops = loops;
+        }
+    }
+
+    /**
+     * The outcome of advancing a due changing block. {@code newStage} is null if the block is already at its last stage.
+     */
+    private static final class StageAdvance {
+        private final StageSnapshot snapshot;
+        private final int oldStageIndex;
+        private final int newStageIndex;
+        private final BlockUri newStage;
+        private final boolean completed;
+
+        private StageAdvance(StageSnapshot snapshot, int oldStageIndex, int newStageIndex, BlockUri newStage, boolean completed) {
+            this.snapshot = snapshot;
+            this.oldStageIndex = oldStageIndex;
+            this.newStageIndex = newStageIndex;
+            this.newStage = newStage;
+            this.completed = completed;
         }
     }
 }
@@ -0,0 +1,137 @@
+// Copyright 2022 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.changingBlocks;
+
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.gestalt.entitysystem.event.Event;
+
+import java.util.Arrays;
+
+/**
+ * Sent to the world entity once per check of the {@link ChangingBlocksSystem}, summarising every changing block that
+ * moved to another stage during that check. Systems reacting to growth in bulk can listen to this instead of one
+ * {@link org.terasology.engine.world.OnChangedBlock} per block; {@link OnBlockSequenceComplete} is still sent to each
+ * entity that finishes its sequence.
+ * <p>
+ * The data is stored in packed arrays, where the i-th entry of each array belongs to the same block. Stage indices
+ * refer to the order of the block's {@link ChangingBlocksComponent#blockFamilyStages}; an old stage of -1 means the
+ * block was not in any of its stages.
+ * <p>
+ * The arrays are shared with every other listener of this event and must be treated as read-only.
+ */
+public class OnBlockStagesAdvanced implements Event {
+    private final int count;
+    private final EntityRef[] entities;
+    private final int[] positions;
+    private final int[] oldStages;
+    private final int[] newStages;
+    private final boolean[] completed;
+
+    private OnBlockStagesAdvanced(int count, EntityRef[] entities, int[] positions, int[] oldStages, int[] newStages,
+                                  boolean[] completed) {
+        this.count = count;
+        this.entities = entities;
+        this.positions = positions;
+        this.oldStages = oldStages;
+        this.newStages = newStages;
+        this.completed = completed;
+    }
+
+    /**
+     * @return The number of blocks that advanced.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return The changing block entities, as they were before their block was replaced.
+     */
+    public EntityRef[] getEntities() {
+        return entities;
+    }
+
+    /**
+     * @return The block positions, packed as x, y, z triples.
+     */
+    public int[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * @param index The index of the block.
+     * @param dest The vector to store the position in.
+     * @return The position of the block at the given index.
+     */
+    public Vector3i getPosition(int index, Vector3i dest) {
+        return dest.set(positions[index * 3], positions[index * 3 + 1], positions[index * 3 + 2]);
+    }
+
+    /**
+     * @return The stage index of each block before it advanced.
+     */
+    public int[] getOldStages() {
+        return oldStages;
+    }
+
+    /**
+     * @return The stage index of each block after it advanced.
+     */
+    public int[] getNewStages() {
+        return newStages;
+    }
+
+    /**
+     * @return Whether each block reached the end of a non-looping sequence.
+     */
+    public boolean[] getCompleted() {
+        return completed;
+    }
+
+    static class Builder {
+        private int count;
+        private EntityRef[] entities;
+        private int[] positions;
+        private int[] oldStages;
+        private int[] newStages;
+        private boolean[] completed;
+
+        Builder(int expectedCount) {
+            entities = new EntityRef[expectedCount];
+            positions = new int[expectedCount * 3];
+            oldStages = new int[expectedCount];
+            newStages = new int[expectedCount];
+            completed = new boolean[expectedCount];
+        }
+
+        void add(EntityRef entity, Vector3ic position, int oldStage, int newStage, boolean isCompleted) {
+            if (count == entities.length) {
+                int capacity = Math.max(1, count * 2);
+                entities = Arrays.copyOf(entities, capacity);
+                positions = Arrays.copyOf(positions, capacity * 3);
+                oldStages = Arrays.copyOf(oldStages, capacity);
+                newStages = Arrays.copyOf(newStages, capacity);
+                completed = Arrays.copyOf(completed, capacity);
+            }
+            entities[count] = entity;
+            positions[count * 3] = position.x();
+            positions[count * 3 + 1] = position.y();
+            positions[count * 3 + 2] = position.z();
+            oldStages[count] = oldStage;
+            newStages[count] = newStage;
+            completed[count] = isCompleted;
+            count++;
+        }
+
+        OnBlockStagesAdvanced build() {
+            return new OnBlockStagesAdvanced(count,
+                    Arrays.copyOf(entities, count),
+                    Arrays.copyOf(positions, count * 3),
+                    Arrays.copyOf(oldStages, count),
+                    Arrays.copyOf(newStages, count),
+                    Arrays.copyOf(completed, count));
+        }
+    }
+}
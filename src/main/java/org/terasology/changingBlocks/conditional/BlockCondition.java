@@ -43,6 +43,16 @@ public class BlockCondition {
         public boolean adjacent = false;
 
         public boolean throughWalls = false;
+        /**
+         * The minimum number of triggering blocks that must be in range. Default 1.
+         * If this is above 1 or maxCount is set, the condition counts the triggering blocks in range instead of reacting to
+         * each one on its own, and throughWalls is ignored.
+         */
+        public int minCount = 1;
+        /**
+         * The maximum number of triggering blocks that may be in range. Default unlimited.
+         */
+        public int maxCount = Integer.MAX_VALUE;
     }
 
     /**
@@ -6,6 +6,7 @@ import org.joml.RoundingMode;
 import org.joml.Vector3f;
 import org.joml.Vector3fc;
 import org.joml.Vector3i;
+import org.joml.Vector3ic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terasology.changingBlocks.conditional.components.ChangeBlockBlockDirectedComponent;
@@ -13,6 +14,7 @@ import org.terasology.changingBlocks.conditional.components.ChangeBlockBlockNear
 import org.terasology.changingBlocks.conditional.components.ChangeBlockEntityDirectedComponent;
 import org.terasology.changingBlocks.conditional.components.ChangeBlockEntityNearbyComponent;
 import org.terasology.changingBlocks.conditional.components.ConditionalBlockChangeComponent;
+import org.terasology.engine.core.Time;
 import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
 import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeRemoveComponent;
@@ -20,6 +22,7 @@ import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnAddedComponen
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
 import org.terasology.engine.logic.characters.CharacterComponent;
 import org.terasology.engine.logic.inventory.ItemComponent;
 import org.terasology.engine.logic.location.LocationChangedEvent;
@@ -33,18 +36,33 @@ import org.terasology.engine.registry.In;
 import org.terasology.engine.utilities.random.FastRandom;
 import org.terasology.engine.utilities.random.Random;
 import org.terasology.engine.world.OnChangedBlock;
+import org.terasology.engine.world.WorldComponent;
 import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
 import org.terasology.engine.world.block.BlockComponent;
 import org.terasology.engine.world.block.BlockManager;
+import org.terasology.engine.world.chunks.Chunks;
+import org.terasology.engine.world.chunks.event.BeforeChunkUnload;
+import org.terasology.engine.world.chunks.event.OnChunkLoaded;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 
 @RegisterSystem(RegisterMode.AUTHORITY)
-public class ConditionalBlocksSystem extends BaseComponentSystem {
+public class ConditionalBlocksSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
+    private static final int COMPACTION_INTERVAL = 60000;
+
     private static Logger log = LoggerFactory.getLogger(ConditionalBlocksSystem.class);
 
     @In
@@ -57,12 +75,70 @@ public class ConditionalBlocksSystem extends BaseComponentSystem {
     private Physics physics;
     @In
     private Random random;
+    @In
+    private Time timer;
 
     /**
-     * Maps block IDs and entity categories to lists of block entities that have changes triggered by such blocks or
+     * Maps block IDs and entity categories to the block entities that have changes triggered by such blocks or
      * entities.
      */
-    private Map<String, List<EntityRef>> triggerCollections = new HashMap<>();
+    private Map<String, TriggerMembers> triggerCollections = new HashMap<>();
+
+    /**
+     * Maps the id of every registered block entity to its current registrations, one per kind of condition. Handles in
+     * {@link #triggerCollections} with any other generation are stale, so deregistering a component or an entity is a
+     * single update here rather than a scan of every trigger.
+     */
+    private Map<Long, Membership> memberships = new HashMap<>();
+
+    private int nextGeneration;
+
+    private long lastCompactionTime;
+
+    /**
+     * The number of handles in {@link #triggerCollections}, live or stale.
+     */
+    private int totalHandles;
+
+    /**
+     * The number of handles in {@link #triggerCollections} that belong to a current registration.
+     */
+    private int liveHandles;
+
+    /**
+     * Maps chunk positions to the ids of the block entities in that chunk which are registered in {@link #memberships},
+     * so that a whole chunk can be deregistered at once when it unloads.
+     */
+    private Map<Vector3i, Set<Long>> registeredByChunk = new HashMap<>();
+
+    /**
+     * Maps chunk positions to block entities that have been added but not yet registered. Loading a chunk adds many
+     * block entities at once, so their registration is deferred and grouped by trigger, and each trigger of a chunk is
+     * resolved once for all of its block entities.
+     */
+    private Map<Vector3i, PendingChunk> pendingRegistrations = new HashMap<>();
+
+    private final Vector3f scratchPosition = new Vector3f();
+    private final Vector3i scratchBlockPos = new Vector3i();
+    private final Vector3i scratchChunkPos = new Vector3i();
+
+    /**
+     * Maps the positions of blocks with counting nearby conditions to the number of triggering blocks currently in
+     * range of each of their {@link ChangeBlockBlockNearbyComponent} changes. Kept up to date from block change events,
+     * so counting conditions never need to rescan the area around the block.
+     */
+    private Map<Vector3i, NearbyCounter> nearbyCounters = new HashMap<>();
+
+    /**
+     * Positions in {@link #nearbyCounters} whose range was not fully loaded when they were counted.
+     */
+    private Set<Vector3i> incompleteCounters = new HashSet<>();
+
+    /**
+     * Indexes the entries of {@link #nearbyCounters} by the blocks they count and by chunk, so that a block change only
+     * visits the counters of its old and new block type in the chunks within range.
+     */
+    private Map<Block, TriggerCounters> countersByTrigger = new HashMap<>();
 
     @Override
     public void initialise() {
@@ -78,17 +154,428 @@ public class ConditionalBlocksSystem extends BaseComponentSystem {
      * @param isBlock Whether this trigger is a block or a free-moving entity like a player or NPC.
      */
     public void registerTrigger(String trigger, EntityRef triggerable, Boolean isBlock) {
-        triggerCollections.compute(
-            trigger.toLowerCase(),
-            (k, v) -> {
-                List<EntityRef> vCopy = v;
-                if (vCopy == null) {
-                    vCopy = new ArrayList<>();
+        Membership membership = memberships.computeIfAbsent(triggerable.getId(), k -> new Membership());
+        triggerCollections.computeIfAbsent(trigger.toLowerCase(), k -> new TriggerMembers())
+                .add(triggerable.getId(), addHandle(membership, ConditionKind.CUSTOM));
+    }
+
+    /**
+     * Counts a new handle of a registration, starting a new generation if the entity has no current registration of
+     * that kind.
+     *
+     * @return The generation to store in the handle.
+     */
+    private int addHandle(Membership membership, ConditionKind kind) {
+        int index = kind.ordinal();
+        if (membership.generations[index] == 0) {
+            membership.generations[index] = ++nextGeneration;
+        }
+        membership.handles[index]++;
+        liveHandles++;
+        totalHandles++;
+        return membership.generations[index];
+    }
+
+    /**
+     * Invalidates every trigger registration of an entity id. The stale handles are dropped lazily.
+     *
+     * @param id The id of the entity.
+     */
+    private void invalidateMember(long id) {
+        Membership membership = memberships.remove(id);
+        if (membership != null) {
+            for (int handles : membership.handles) {
+                liveHandles -= handles;
+            }
+        }
+    }
+
+    /**
+     * Invalidates the trigger registrations of one kind of condition of a block entity, leaving its other registrations
+     * untouched. Once none are left, the entity is also removed from its chunk.
+     *
+     * @param entity The block entity.
+     * @param kind The kind of condition to deregister.
+     */
+    private void invalidateKind(EntityRef entity, ConditionKind kind) {
+        Membership membership = memberships.get(entity.getId());
+        if (membership == null) {
+            return;
+        }
+        int index = kind.ordinal();
+        liveHandles -= membership.handles[index];
+        membership.handles[index] = 0;
+        membership.generations[index] = 0;
+        if (!membership.isEmpty()) {
+            return;
+        }
+        memberships.remove(entity.getId());
+        LocationComponent location = entity.getComponent(LocationComponent.class);
+        if (location != null) {
+            Vector3i blockPosition = new Vector3i(location.getWorldPosition(new Vector3f()), RoundingMode.FLOOR);
+            Vector3i chunkPos = Chunks.toChunkPos(blockPosition, new Vector3i());
+            Set<Long> chunkIds = registeredByChunk.get(chunkPos);
+            if (chunkIds != null && chunkIds.remove(entity.getId()) && chunkIds.isEmpty()) {
+                registeredByChunk.remove(chunkPos);
+            }
+        }
+    }
+
+    private boolean isCurrentMember(long id, int generation) {
+        Membership membership = memberships.get(id);
+        return membership != null && membership.isCurrent(generation);
+    }
+
+    private EntityRef resolveMember(long id, int generation) {
+        if (!isCurrentMember(id, generation)) {
+            return EntityRef.NULL;
+        }
+        EntityRef entity = entityManager.getEntity(id);
+        if (!entity.exists()) {
+            // Went away without a removal event
+            invalidateMember(id);
+        }
+        return entity;
+    }
+
+    /**
+     * Runs an action for every live block entity registered with a trigger, dropping stale registrations on the way.
+     *
+     * @param trigger The lower case name of the trigger.
+     * @param action The action to run for each live block entity.
+     */
+    private void forEachMember(String trigger, Consumer<EntityRef> action) {
+        TriggerMembers members = triggerCollections.get(trigger);
+        if (members != null) {
+            totalHandles -= members.forEachLive(this::resolveMember, this::isCurrentMember, action);
+        }
+    }
+
+    /**
+     * Finds the queued registrations of the chunk a block entity is in. The registration is done in bulk once the chunk
+     * has finished loading, or on the next update if the chunk was already loaded.
+     *
+     * @param entity The block entity to queue.
+     * @return The queued registrations of its chunk, with the entity added.
+     */
+    private PendingChunk queueRegistration(EntityRef entity) {
+        LocationComponent location = entity.getComponent(LocationComponent.class);
+        Vector3i blockPosition = scratchBlockPos.set(location.getWorldPosition(scratchPosition), RoundingMode.FLOOR);
+        Vector3i chunkPos = Chunks.toChunkPos(blockPosition, scratchChunkPos);
+        PendingChunk pending = pendingRegistrations.get(chunkPos);
+        if (pending == null) {
+            pending = new PendingChunk();
+            pendingRegistrations.put(new Vector3i(chunkPos), pending);
+        }
+        pending.entities.add(entity);
+        return pending;
+    }
+
+    /**
+     * Registers all queued block entities of one chunk. Each trigger is lower cased and looked up once, and then all of
+     * its block entities are added to it.
+     *
+     * @param chunkPos The position of the chunk.
+     * @param pending The queued registrations of that chunk.
+     */
+    private void registerChunk(Vector3i chunkPos, PendingChunk pending) {
+        Set<Long> chunkIds = registeredByChunk.computeIfAbsent(chunkPos, k -> new HashSet<>());
+        for (EntityRef entity : pending.entities) {
+            if (entity.exists()) {
+                memberships.computeIfAbsent(entity.getId(), k -> new Membership());
+                chunkIds.add(entity.getId());
+            }
+        }
+        if (chunkIds.isEmpty()) {
+            registeredByChunk.remove(chunkPos);
+            return;
+        }
+        pending.byKind.forEach((kind, byTrigger) -> byTrigger.forEach((trigger, entities) -> {
+            TriggerMembers members = triggerCollections.computeIfAbsent(trigger.toLowerCase(), k -> new TriggerMembers());
+            for (EntityRef entity : entities) {
+                Membership membership = memberships.get(entity.getId());
+                // Skips components that were removed again before their chunk was registered
+                if (membership != null && entity.hasComponent(kind.componentType)) {
+                    members.add(entity.getId(), addHandle(membership, kind));
+                }
+            }
+        }));
+        Map<Vector3ic, Block> changes = new HashMap<>();
+        for (EntityRef entity : pending.entities) {
+            if (entity.exists()) {
+                initialiseNearbyCounts(entity, changes);
+            }
+        }
+        placeBlocks(changes);
+    }
+
+    /**
+     * Registers every queued block entity whose chunk did not send {@link OnChunkLoaded}, such as blocks placed in a
+     * chunk that was already loaded.
+     */
+    private void registerPending() {
+        if (!pendingRegistrations.isEmpty()) {
+            // Swapped out first, as placing blocks while registering may queue new registrations
+            Map<Vector3i, PendingChunk> pending = pendingRegistrations;
+            pendingRegistrations = new HashMap<>();
+            pending.forEach(this::registerChunk);
+        }
+    }
+
+    /**
+     * Whether a nearby condition counts the triggering blocks in range rather than reacting to each one on its own.
+     */
+    private static boolean countsNearby(BlockCondition.BlockNearby change) {
+        return change.minCount > 1 || change.maxCount != Integer.MAX_VALUE;
+    }
+
+    private static boolean isInCountRange(BlockCondition.BlockNearby change, float distance) {
+        if (distance == 0) {
+            return false;
+        }
+        if (change.adjacent) {
+            return distance < 2;
+        }
+        return distance >= change.minDistance && distance <= change.maxDistance;
+    }
+
+    private static int countRadius(BlockCondition.BlockNearby change) {
+        return change.adjacent ? 1 : (int) change.maxDistance;
+    }
+
+    /**
+     * Starts counting the triggering blocks around a newly registered block with counting nearby conditions.
+     *
+     * @param entity The newly registered block entity.
+     * @param changes Collects the blocks to place if a condition is already met.
+     */
+    private void initialiseNearbyCounts(EntityRef entity, Map<Vector3ic, Block> changes) {
+        ChangeBlockBlockNearbyComponent bn = entity.getComponent(ChangeBlockBlockNearbyComponent.class);
+        if (bn == null) {
+            return;
+        }
+        Vector3i position = new Vector3i(entity.getComponent(LocationComponent.class).getWorldPosition(new Vector3f()),
+                RoundingMode.FLOOR);
+        NearbyCounter existing = nearbyCounters.get(position);
+        if (existing != null) {
+            if (existing.entity.equals(entity)) {
+                return;
+            }
+            removeCounterAt(position);
+        }
+        Block[] triggerBlocks = null;
+        Map<Block, Integer> triggerRadii = new HashMap<>();
+        for (int i = 0; i < bn.changes.size(); i++) {
+            BlockCondition.BlockNearby change = bn.changes.get(i);
+            if (countsNearby(change)) {
+                if (triggerBlocks == null) {
+                    triggerBlocks = new Block[bn.changes.size()];
+                }
+                triggerBlocks[i] = blockManager.getBlock(change.triggerBlockID);
+                triggerRadii.merge(triggerBlocks[i], countRadius(change), Math::max);
+            }
+        }
+        if (triggerBlocks == null) {
+            return;
+        }
+        NearbyCounter counter = new NearbyCounter(entity, position, Chunks.toChunkPos(position, new Vector3i()), triggerBlocks,
+                triggerRadii);
+        nearbyCounters.put(position, counter);
+        indexCounter(counter);
+        recount(counter, bn, changes);
+        if (!counter.complete) {
+            incompleteCounters.add(position);
+        }
+    }
+
+    /**
+     * Counts the triggering blocks around a block from scratch. The count is only complete once every block in range
+     * is loaded; until then its conditions are not evaluated, and it is counted again as neighbouring chunks load.
+     *
+     * @param counter The counts to recompute.
+     * @param bn The nearby conditions of the counted block.
+     * @param changes Collects the blocks to place if a condition is met.
+     */
+    private void recount(NearbyCounter counter, ChangeBlockBlockNearbyComponent bn, Map<Vector3ic, Block> changes) {
+        Arrays.fill(counter.counts, 0);
+        counter.complete = true;
+        int conditionCount = Math.min(counter.triggerBlocks.length, bn.changes.size());
+        Vector3i scanPosition = new Vector3i();
+        for (int x = -counter.radius; x <= counter.radius; x++) {
+            for (int y = -counter.radius; y <= counter.radius; y++) {
+                for (int z = -counter.radius; z <= counter.radius; z++) {
+                    counter.position.add(x, y, z, scanPosition);
+                    if (!worldprovider.isBlockRelevant(scanPosition)) {
+                        counter.complete = false;
+                        continue;
+                    }
+                    Block block = worldprovider.getBlock(scanPosition);
+                    float distance = (float) counter.position.distance(scanPosition);
+                    for (int i = 0; i < conditionCount; i++) {
+                        if (block == counter.triggerBlocks[i] && isInCountRange(bn.changes.get(i), distance)) {
+                            counter.counts[i]++;
+                        }
+                    }
+                }
+            }
+        }
+        if (counter.complete) {
+            for (int i = 0; i < conditionCount; i++) {
+                if (counter.triggerBlocks[i] != null) {
+                    evaluateCount(counter, bn.changes.get(i), counter.counts[i], changes);
+                }
+            }
+        }
+    }
+
+    private void evaluateCount(NearbyCounter counter, BlockCondition.BlockNearby change, int count, Map<Vector3ic, Block> changes) {
+        if (count >= change.minCount && count <= change.maxCount && change.chance >= random.nextFloat()) {
+            changes.putIfAbsent(counter.position, blockManager.getBlock(change.targetBlockID));
+        }
+    }
+
+    /**
+     * Adjusts the counts of the counting blocks in range of a changed block, and changes the blocks whose count is now
+     * within their condition's bounds. A change to a block type that nothing counts costs two map lookups; otherwise
+     * only the counters of that type in the chunks within its largest counting range are visited.
+     *
+     * @param changedPosition The position of the block that changed.
+     * @param oldBlock The block that was there before.
+     * @param newBlock The block that is there now.
+     * @param changes Collects the blocks to place.
+     */
+    private void updateNearbyCounts(Vector3ic changedPosition, Block oldBlock, Block newBlock, Map<Vector3ic, Block> changes) {
+        TriggerCounters oldCounters = countersByTrigger.get(oldBlock);
+        if (oldCounters != null) {
+            adjustCounts(oldCounters, changedPosition, oldBlock, -1, changes);
+        }
+        TriggerCounters newCounters = countersByTrigger.get(newBlock);
+        if (newCounters != null) {
+            adjustCounts(newCounters, changedPosition, newBlock, 1, changes);
+        }
+    }
+
+    private void adjustCounts(TriggerCounters triggerCounters, Vector3ic changedPosition, Block triggerBlock, int delta,
+                              Map<Vector3ic, Block> changes) {
+        int radius = triggerCounters.radii.lastKey();
+        Vector3i minChunk = Chunks.toChunkPos(changedPosition.sub(radius, radius, radius, new Vector3i()), new Vector3i());
+        Vector3i maxChunk = Chunks.toChunkPos(changedPosition.add(radius, radius, radius, new Vector3i()), new Vector3i());
+        Vector3i chunkPos = new Vector3i();
+        for (int cx = minChunk.x; cx <= maxChunk.x; cx++) {
+            for (int cy = minChunk.y; cy <= maxChunk.y; cy++) {
+                for (int cz = minChunk.z; cz <= maxChunk.z; cz++) {
+                    List<NearbyCounter> counters = triggerCounters.byChunk.get(chunkPos.set(cx, cy, cz));
+                    if (counters == null) {
+                        continue;
+                    }
+                    for (NearbyCounter counter : counters) {
+                        ChangeBlockBlockNearbyComponent bn = counter.entity.getComponent(ChangeBlockBlockNearbyComponent.class);
+                        if (bn == null) {
+                            continue;
+                        }
+                        float distance = (float) counter.position.distance(changedPosition);
+                        int conditionCount = Math.min(counter.triggerBlocks.length, bn.changes.size());
+                        for (int i = 0; i < conditionCount; i++) {
+                            BlockCondition.BlockNearby change = bn.changes.get(i);
+                            if (counter.triggerBlocks[i] == triggerBlock && isInCountRange(change, distance)) {
+                                counter.counts[i] += delta;
+                                if (counter.complete) {
+                                    evaluateCount(counter, change, counter.counts[i], changes);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void indexCounter(NearbyCounter counter) {
+        counter.triggerRadii.forEach((triggerBlock, radius) -> {
+            TriggerCounters triggerCounters = countersByTrigger.computeIfAbsent(triggerBlock, k -> new TriggerCounters());
+            triggerCounters.byChunk.computeIfAbsent(counter.chunkPos, k -> new ArrayList<>()).add(counter);
+            triggerCounters.radii.merge(radius, 1, Integer::sum);
+        });
+    }
+
+    private void unindexCounter(NearbyCounter counter) {
+        counter.triggerRadii.forEach((triggerBlock, radius) -> {
+            TriggerCounters triggerCounters = countersByTrigger.get(triggerBlock);
+            if (triggerCounters == null) {
+                return;
+            }
+            List<NearbyCounter> counters = triggerCounters.byChunk.get(counter.chunkPos);
+            if (counters != null && counters.remove(counter) && counters.isEmpty()) {
+                triggerCounters.byChunk.remove(counter.chunkPos);
+            }
+            if (triggerCounters.radii.merge(radius, -1, Integer::sum) == 0) {
+                triggerCounters.radii.remove(radius);
+            }
+            if (triggerCounters.byChunk.isEmpty()) {
+                countersByTrigger.remove(triggerBlock);
+            }
+        });
+    }
+
+    private void removeCounterAt(Vector3i position) {
+        NearbyCounter counter = nearbyCounters.remove(position);
+        incompleteCounters.remove(position);
+        if (counter != null) {
+            unindexCounter(counter);
+        }
+    }
+
+    /**
+     * Recounts the incomplete counts whose range reaches into a chunk that has just loaded.
+     *
+     * @param chunkPos The position of the loaded chunk.
+     * @param changes Collects the blocks to place if a condition is met.
+     */
+    private void recountAround(Vector3ic chunkPos, Map<Vector3ic, Block> changes) {
+        Vector3i minChunk = new Vector3i();
+        Vector3i maxChunk = new Vector3i();
+        Iterator<Vector3i> incomplete = incompleteCounters.iterator();
+        while (incomplete.hasNext()) {
+            NearbyCounter counter = nearbyCounters.get(incomplete.next());
+            ChangeBlockBlockNearbyComponent bn = counter == null ? null
+                    : counter.entity.getComponent(ChangeBlockBlockNearbyComponent.class);
+            if (bn == null) {
+                incomplete.remove();
+                continue;
+            }
+            Chunks.toChunkPos(counter.position.sub(counter.radius, counter.radius, counter.radius, minChunk), minChunk);
+            Chunks.toChunkPos(counter.position.add(counter.radius, counter.radius, counter.radius, maxChunk), maxChunk);
+            if (chunkPos.x() >= minChunk.x && chunkPos.y() >= minChunk.y && chunkPos.z() >= minChunk.z
+                    && chunkPos.x() <= maxChunk.x && chunkPos.y() <= maxChunk.y && chunkPos.z() <= maxChunk.z) {
+                recount(counter, bn, changes);
+                if (counter.complete) {
+                    incomplete.remove();
                 }
-                vCopy.add(triggerable);
-                return vCopy;
             }
-        );
+        }
+    }
+
+    /**
+     * Stops counting for a block entity, if it was counted.
+     *
+     * @param entity The block entity.
+     */
+    private void removeCounter(EntityRef entity) {
+        LocationComponent location = entity.getComponent(LocationComponent.class);
+        if (location == null) {
+            return;
+        }
+        Vector3i position = new Vector3i(location.getWorldPosition(new Vector3f()), RoundingMode.FLOOR);
+        NearbyCounter counter = nearbyCounters.get(position);
+        if (counter != null && counter.entity.equals(entity)) {
+            removeCounterAt(position);
+        }
+    }
+
+    private void placeBlocks(Map<Vector3ic, Block> changes) {
+        if (!changes.isEmpty()) {
+            worldprovider.setBlocks(changes);
+        }
     }
 
     private void checkBlockNearby(EntityRef entity, Vector3fc triggerPosition, String triggerName, EntityRef blockChange) {
@@ -96,8 +583,8 @@ public class ConditionalBlocksSystem extends BaseComponentSystem {
         if (bn != null) {
             //check the possible changes for this block
             for (BlockCondition.BlockNearby change : bn.changes) {
-                //if the trigger matches
-                if (change.triggerBlockID.equals(triggerName)) {
+                //if the trigger matches, counting conditions are handled by updateNearbyCounts
+                if (change.triggerBlockID.equals(triggerName) && !countsNearby(change)) {
                     LocationComponent blockLocation = blockChange.getComponent(LocationComponent.class);
                     Vector3f changeSpot = blockLocation.getWorldPosition(new Vector3f());
                     float distance = changeSpot.distance(triggerPosition);
@@ -235,7 +722,7 @@ public class ConditionalBlocksSystem extends BaseComponentSystem {
      * @param isBlock Whether this entity is a block entity or another type.
      */
     public void checkLocational(EntityRef entity, Vector3fc triggerPosition, String triggerName, Boolean isBlock) {
-        for (EntityRef blockChange : triggerCollections.get(triggerName)) {
+        forEachMember(triggerName, blockChange -> {
             if (isBlock) {
                 checkBlockNearby(entity, triggerPosition, triggerName, blockChange);
                 checkBlockDirected(entity, triggerPosition, triggerName, blockChange);
@@ -243,7 +730,7 @@ public class ConditionalBlocksSystem extends BaseComponentSystem {
                 checkEntityNearby(entity, triggerPosition, triggerName, blockChange);
                 checkEntityDirected(entity, triggerPosition, triggerName, blockChange);
             }
-        }
+        });
     }
 
     /**
@@ -300,6 +787,11 @@ public class ConditionalBlocksSystem extends BaseComponentSystem {
     @ReceiveEvent(components = {BlockComponent.class, LocationComponent.class})
     public void onUpdate(OnChangedBlock event, EntityRef entity) {
         String trigger = event.getNewType().getURI().toString().toLowerCase();
+        if (!countersByTrigger.isEmpty() && event.getOldType() != event.getNewType()) {
+            Map<Vector3ic, Block> changes = new HashMap<>();
+            updateNearbyCounts(event.getBlockPosition(), event.getOldType(), event.getNewType(), changes);
+            placeBlocks(changes);
+        }
         if (triggerCollections.containsKey(trigger)) {
             checkLocational(entity, new Vector3f(event.getBlockPosition()), trigger, true);
         }
@@ -313,10 +805,14 @@ public class ConditionalBlocksSystem extends BaseComponentSystem {
      */
     @ReceiveEvent(components = {ChangeBlockBlockDirectedComponent.class, LocationComponent.class, BlockComponent.class})
     public void onSpawnBlockDirected(OnAddedComponent event, EntityRef entity) {
+        queueBlockDirected(entity);
+    }
+
+    private void queueBlockDirected(EntityRef entity) {
         ChangeBlockBlockDirectedComponent changingBlocks = entity.getComponent(ChangeBlockBlockDirectedComponent.class);
-        List<BlockCondition.BlockDirected> listOfChanges = changingBlocks.changes;
-        for (BlockCondition.BlockDirected bc : listOfChanges) {
-            registerTrigger(bc.triggerBlockID, entity, true);
+        PendingChunk pending = queueRegistration(entity);
+        for (BlockCondition.BlockDirected bc : changingBlocks.changes) {
+            pending.add(ConditionKind.BLOCK_DIRECTED, bc.triggerBlockID, entity);
         }
     }
 
@@ -328,10 +824,14 @@ public class ConditionalBlocksSystem extends BaseComponentSystem {
      */
     @ReceiveEvent(components = {ChangeBlockBlockNearbyComponent.class, LocationComponent.class, BlockComponent.class})
     public void onSpawnBlockNearby(OnAddedComponent event, EntityRef entity) {
+        queueBlockNearby(entity);
+    }
+
+    private void queueBlockNearby(EntityRef entity) {
         ChangeBlockBlockNearbyComponent changingBlocks = entity.getComponent(ChangeBlockBlockNearbyComponent.class);
-        List<BlockCondition.BlockNearby> listOfChanges = changingBlocks.changes;
-        for (BlockCondition.BlockNearby bc : listOfChanges) {
-            registerTrigger(bc.triggerBlockID, entity, true);
+        PendingChunk pending = queueRegistration(entity);
+        for (BlockCondition.BlockNearby bc : changingBlocks.changes) {
+            pending.add(ConditionKind.BLOCK_NEARBY, bc.triggerBlockID, entity);
         }
     }
 
@@ -343,10 +843,14 @@ public class ConditionalBlocksSystem extends BaseComponentSystem {
      */
     @ReceiveEvent(components = {ChangeBlockEntityDirectedComponent.class, LocationComponent.class, BlockComponent.class})
     public void onSpawnEntityDirected(OnAddedComponent event, EntityRef entity) {
+        queueEntityDirected(entity);
+    }
+
+    private void queueEntityDirected(EntityRef entity) {
         ChangeBlockEntityDirectedComponent changingBlocks = entity.getComponent(ChangeBlockEntityDirectedComponent.class);
-        List<BlockCondition.EntityDirected> listOfChanges = changingBlocks.changes;
-        for (BlockCondition.EntityDirected ec : listOfChanges) {
-            registerTrigger(ec.triggerEntity, entity, false);
+        PendingChunk pending = queueRegistration(entity);
+        for (BlockCondition.EntityDirected ec : changingBlocks.changes) {
+            pending.add(ConditionKind.ENTITY_DIRECTED, ec.triggerEntity, entity);
         }
     }
 
@@ -358,27 +862,172 @@ public class ConditionalBlocksSystem extends BaseComponentSystem {
      */
     @ReceiveEvent(components = {ChangeBlockEntityNearbyComponent.class, LocationComponent.class, BlockComponent.class})
     public void onSpawnEntityNearby(OnAddedComponent event, EntityRef entity) {
+        queueEntityNearby(entity);
+    }
+
+    private void queueEntityNearby(EntityRef entity) {
         ChangeBlockEntityNearbyComponent changingBlocks = entity.getComponent(ChangeBlockEntityNearbyComponent.class);
-        List<BlockCondition.EntityNearby> listOfChanges = changingBlocks.changes;
-        for (BlockCondition.EntityNearby ec : listOfChanges) {
-            registerTrigger(ec.triggerEntity, entity, false);
+        PendingChunk pending = queueRegistration(entity);
+        for (BlockCondition.EntityNearby ec : changingBlocks.changes) {
+            pending.add(ConditionKind.ENTITY_NEARBY, ec.triggerEntity, entity);
         }
     }
 
+    /**
+     * Removes a block entity from the list of triggerable blocks whenever the block is removed. Event handlers are
+     * matched on concrete component classes, so there is one handler per {@link ConditionalBlockChangeComponent}.
+     *
+     * @param event The event caused by the block's removal.
+     * @param entity The block entity to deregister.
+     */
+    @ReceiveEvent(components = {ChangeBlockBlockDirectedComponent.class, LocationComponent.class, BlockComponent.class})
+    public void onRemovingBlockDirected(BeforeRemoveComponent event, EntityRef entity) {
+        removeConditions(entity, ConditionKind.BLOCK_DIRECTED);
+    }
+
+    /**
+     * Removes a block entity from the list of triggerable blocks whenever the block is removed.
+     *
+     * @param event The event caused by the block's removal.
+     * @param entity The block entity to deregister.
+     */
+    @ReceiveEvent(components = {ChangeBlockBlockNearbyComponent.class, LocationComponent.class, BlockComponent.class})
+    public void onRemovingBlockNearby(BeforeRemoveComponent event, EntityRef entity) {
+        removeConditions(entity, ConditionKind.BLOCK_NEARBY);
+    }
+
+    /**
+     * Removes a block entity from the list of triggerable blocks whenever the block is removed.
+     *
+     * @param event The event caused by the block's removal.
+     * @param entity The block entity to deregister.
+     */
+    @ReceiveEvent(components = {ChangeBlockEntityDirectedComponent.class, LocationComponent.class, BlockComponent.class})
+    public void onRemovingEntityDirected(BeforeRemoveComponent event, EntityRef entity) {
+        removeConditions(entity, ConditionKind.ENTITY_DIRECTED);
+    }
+
     /**
      * Removes a block entity from the list of triggerable blocks whenever the block is removed.
      *
      * @param event The event caused by the block's removal.
      * @param entity The block entity to deregister.
      */
-    @ReceiveEvent(components = {ConditionalBlockChangeComponent.class, LocationComponent.class, BlockComponent.class})
-    public void onRemoving(BeforeRemoveComponent event, EntityRef entity) {
-        triggerCollections.replaceAll(
-            (trigger, refs) -> {
-                refs.remove(entity);
-                return refs;
+    @ReceiveEvent(components = {ChangeBlockEntityNearbyComponent.class, LocationComponent.class, BlockComponent.class})
+    public void onRemovingEntityNearby(BeforeRemoveComponent event, EntityRef entity) {
+        removeConditions(entity, ConditionKind.ENTITY_NEARBY);
+    }
+
+    /**
+     * Deregisters the conditions of a conditional component that is being removed. The registrations and nearby counts
+     * of the entity's other conditional components stay as they are.
+     *
+     * @param entity The block entity.
+     * @param removed The kind of the conditional component being removed.
+     */
+    private void removeConditions(EntityRef entity, ConditionKind removed) {
+        invalidateKind(entity, removed);
+        if (removed == ConditionKind.BLOCK_NEARBY) {
+            removeCounter(entity);
+        }
+    }
+
+    /**
+     * Registers the block entities of a chunk that has finished loading.
+     *
+     * @param event The event sent once the chunk is ready.
+     * @param worldEntity The world entity.
+     */
+    @ReceiveEvent(components = WorldComponent.class)
+    public void onChunkLoaded(OnChunkLoaded event, EntityRef worldEntity) {
+        Vector3i chunkPos = new Vector3i(event.getChunkPos());
+        PendingChunk pending = pendingRegistrations.remove(chunkPos);
+        if (pending != null) {
+            registerChunk(chunkPos, pending);
+        }
+        if (!incompleteCounters.isEmpty()) {
+            Map<Vector3ic, Block> changes = new HashMap<>();
+            recountAround(chunkPos, changes);
+            placeBlocks(changes);
+        }
+    }
+
+    /**
+     * Deregisters all block entities of a chunk before the chunk is unloaded.
+     *
+     * @param event The event sent before the chunk unloads.
+     * @param worldEntity The world entity.
+     */
+    @ReceiveEvent(components = WorldComponent.class)
+    public void onChunkUnloading(BeforeChunkUnload event, EntityRef worldEntity) {
+        Vector3i chunkPos = new Vector3i(event.getChunkPos());
+        pendingRegistrations.remove(chunkPos);
+        Set<Long> chunkIds = registeredByChunk.remove(chunkPos);
+        if (chunkIds != null) {
+            for (long id : chunkIds) {
+                invalidateMember(id);
+                removeCounter(entityManager.getEntity(id));
+            }
+        }
+    }
+
+    /**
+     * Registers the queued block entities that were not registered by their chunk loading, and periodically drops the
+     * stale registrations of triggers that have not been checked in a while.
+     */
+    @Override
+    public void update(float delta) {
+        registerPending();
+        long gameTimeInMs = timer.getGameTimeInMs();
+        if (lastCompactionTime + COMPACTION_INTERVAL < gameTimeInMs) {
+            compactTriggers();
+            lastCompactionTime = gameTimeInMs;
+        }
+    }
+
+    private void compactTriggers() {
+        // Entities that went away without a removal event invalidate all of their registrations here
+        List<Long> goneIds = new ArrayList<>();
+        memberships.forEach((id, membership) -> {
+            if (membership.isEmpty() || !entityManager.getEntity(id).exists()) {
+                goneIds.add(id);
+            }
+        });
+        goneIds.forEach(this::invalidateMember);
+        for (Set<Long> chunkIds : registeredByChunk.values()) {
+            chunkIds.removeIf(id -> !memberships.containsKey(id));
+        }
+        registeredByChunk.values().removeIf(Set::isEmpty);
+        List<Vector3i> goneCounters = new ArrayList<>();
+        nearbyCounters.forEach((position, counter) -> {
+            if (!counter.entity.exists()) {
+                goneCounters.add(position);
             }
-        );
+        });
+        goneCounters.forEach(this::removeCounterAt);
+
+        int staleBefore = getStaleTriggerMembers();
+        for (TriggerMembers members : triggerCollections.values()) {
+            totalHandles -= members.compact(this::isCurrentMember);
+        }
+        triggerCollections.values().removeIf(members -> members.size() == 0);
+        log.debug("Compacted trigger registrations: {} live, {} stale before and {} stale after", liveHandles, staleBefore,
+                getStaleTriggerMembers());
+    }
+
+    /**
+     * @return The number of trigger registrations of block entities that are currently registered.
+     */
+    public int getLiveTriggerMembers() {
+        return liveHandles;
+    }
+
+    /**
+     * @return The number of trigger registrations currently held in memory that belong to removed or unloaded block
+     *         entities and have not been dropped yet.
+     */
+    public int getStaleTriggerMembers() {
+        return totalHandles - liveHandles;
     }
 
     /**
@@ -390,6 +1039,125 @@ public class ConditionalBlocksSystem extends BaseComponentSystem {
             log.info("Clearing list of " + triggerCollections.get(trigger).size() + " entities triggered by " + trigger);
         }
         triggerCollections.clear();
+        memberships.clear();
+        totalHandles = 0;
+        liveHandles = 0;
+        registeredByChunk.clear();
+        pendingRegistrations.clear();
+        nearbyCounters.clear();
+        incompleteCounters.clear();
+        countersByTrigger.clear();
+    }
+
+    /**
+     * The number of triggering blocks in range of each counting nearby condition of a block.
+     */
+    private static final class NearbyCounter {
+        private final EntityRef entity;
+        private final Vector3i position;
+        private final Vector3i chunkPos;
+        /**
+         * The block each condition counts, or null for conditions that do not count.
+         */
+        private final Block[] triggerBlocks;
+        /**
+         * The largest counting range of each counted block.
+         */
+        private final Map<Block, Integer> triggerRadii;
+        private final int[] counts;
+        private final int radius;
+        private boolean complete;
+
+        private NearbyCounter(EntityRef entity, Vector3i position, Vector3i chunkPos, Block[] triggerBlocks,
+                              Map<Block, Integer> triggerRadii) {
+            this.entity = entity;
+            this.position = position;
+            this.chunkPos = chunkPos;
+            this.triggerBlocks = triggerBlocks;
+            this.triggerRadii = triggerRadii;
+            this.counts = new int[triggerBlocks.length];
+            this.radius = Collections.max(triggerRadii.values());
+        }
+    }
+
+    /**
+     * The counters of one counted block type.
+     */
+    private static final class TriggerCounters {
+        private final Map<Vector3i, List<NearbyCounter>> byChunk = new HashMap<>();
+        /**
+         * How many counters count this block within each range, so the largest range shrinks again as counters go.
+         */
+        private final TreeMap<Integer, Integer> radii = new TreeMap<>();
+    }
+
+    /**
+     * The kinds of condition a block entity can be registered with, so that removing one conditional component only
+     * invalidates the registrations made for it.
+     */
+    private enum ConditionKind {
+        BLOCK_DIRECTED(ChangeBlockBlockDirectedComponent.class),
+        BLOCK_NEARBY(ChangeBlockBlockNearbyComponent.class),
+        ENTITY_DIRECTED(ChangeBlockEntityDirectedComponent.class),
+        ENTITY_NEARBY(ChangeBlockEntityNearbyComponent.class),
+        /**
+         * Registrations made by other modules through {@link #registerTrigger}, which are not backed by a component.
+         */
+        CUSTOM(null);
+
+        private final Class<? extends ConditionalBlockChangeComponent<?>> componentType;
+
+        ConditionKind(Class<? extends ConditionalBlockChangeComponent<?>> componentType) {
+            this.componentType = componentType;
+        }
+    }
+
+    /**
+     * The current registrations of a block entity, indexed by {@link ConditionKind}.
+     */
+    private static final class Membership {
+        /**
+         * The generation of each kind of registration, or 0 if the entity is not registered with that kind.
+         */
+        private final int[] generations = new int[ConditionKind.values().length];
+        /**
+         * The number of handles in {@link #triggerCollections} that belong to each kind of registration.
+         */
+        private final int[] handles = new int[ConditionKind.values().length];
+
+        private boolean isCurrent(int generation) {
+            for (int current : generations) {
+                if (current == generation) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isEmpty() {
+            for (int generation : generations) {
+                if (generation != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The block entities of one chunk waiting to be registered, grouped by kind of condition and by the trigger names
+     * of their conditions as written in their components.
+     */
+    private static final class PendingChunk {
+        /**
+         * Every queued block entity, once per queued conditional component.
+         */
+        private final List<EntityRef> entities = new ArrayList<>();
+        private final Map<ConditionKind, Map<String, List<EntityRef>>> byKind = new EnumMap<>(ConditionKind.class);
+
+        private void add(ConditionKind kind, String trigger, EntityRef entity) {
+            byKind.computeIfAbsent(kind, k -> new HashMap<>()).computeIfAbsent(trigger, k -> new ArrayList<>()).add(entity);
+        }
     }
 
 }
@@ -0,0 +1,108 @@
+// Copyright 2022 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.changingBlocks.conditional;
+
+import org.terasology.engine.entitySystem.entity.EntityRef;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * The block entities registered with a single trigger, stored as (entity id, generation) handles. A handle stays in
+ * the list after its entity is removed or unloaded; it is skipped and dropped the next time the list is iterated or
+ * compacted.
+ */
+final class TriggerMembers {
+    private long[] ids = new long[4];
+    private int[] generations = new int[4];
+    private int size;
+    private int iterating;
+    private boolean hasStale;
+
+    /**
+     * Resolves a handle to its entity.
+     */
+    interface Resolver {
+        /**
+         * @return The entity, or {@link EntityRef#NULL} if the handle is stale.
+         */
+        EntityRef resolve(long id, int generation);
+    }
+
+    /**
+     * Checks whether a handle still belongs to the current registration of its entity, without resolving it.
+     */
+    interface Validator {
+        boolean isCurrent(long id, int generation);
+    }
+
+    void add(long id, int generation) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            generations = Arrays.copyOf(generations, size * 2);
+        }
+        ids[size] = id;
+        generations[size] = generation;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Runs the action for every live member, resolving each handle only when it is reached. The action may place
+     * blocks and so iterate this same list again, so stale handles are only removed once no iteration is running.
+     *
+     * @param resolver Resolves handles to entities.
+     * @param validator Checks handles when removing the stale ones.
+     * @param action The action to run for each live entity.
+     * @return The number of stale handles that were removed.
+     */
+    int forEachLive(Resolver resolver, Validator validator, Consumer<EntityRef> action) {
+        iterating++;
+        try {
+            for (int i = 0; i < size; i++) {
+                EntityRef entity = resolver.resolve(ids[i], generations[i]);
+                if (entity.exists()) {
+                    action.accept(entity);
+                } else {
+                    hasStale = true;
+                }
+            }
+        } finally {
+            iterating--;
+        }
+        return hasStale ? compact(validator) : 0;
+    }
+
+    /**
+     * Removes every stale handle and shrinks the storage if most of it is unused. Does nothing while the list is being
+     * iterated.
+     *
+     * @param validator Checks whether each handle is still current.
+     * @return The number of stale handles that were removed.
+     */
+    int compact(Validator validator) {
+        if (iterating > 0) {
+            return 0;
+        }
+        int live = 0;
+        for (int i = 0; i < size; i++) {
+            if (validator.isCurrent(ids[i], generations[i])) {
+                ids[live] = ids[i];
+                generations[live] = generations[i];
+                live++;
+            }
+        }
+        int stale = size - live;
+        size = live;
+        hasStale = false;
+        if (ids.length > 4 && size < ids.length / 4) {
+            int capacity = Math.max(4, size * 2);
+            ids = Arrays.copyOf(ids, capacity);
+            generations = Arrays.copyOf(generations, capacity);
+        }
+        return stale;
+    }
+}